@@ -0,0 +1,33 @@
+package aquelarre.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the per-message benchmarks with the GC profiler: "gc.alloc.rate.norm" is the number of bytes allocated
+ * per message (per operation). Extra arguments are taken as benchmark name patterns replacing the defaults.
+ */
+public class AllocationProfile {
+    private AllocationProfile() {}
+
+    public static void main(final String[] args) throws RunnerException {
+        final OptionsBuilder options = new OptionsBuilder();
+        if (args.length == 0) {
+            options.include(FramingBenchmark.class.getSimpleName());
+            options.include(RoutingBenchmark.class.getSimpleName());
+            options.include(UnicastBenchmark.class.getSimpleName());
+        } else {
+            for (final String pattern : args)
+                options.include(pattern);
+        }
+
+        final Options profiled = options
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                .build();
+        new Runner(profiled).run();
+    }
+}
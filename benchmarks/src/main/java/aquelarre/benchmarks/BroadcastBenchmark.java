@@ -0,0 +1,76 @@
+package aquelarre.benchmarks;
+
+import aquelarre.Client;
+import aquelarre.benchmarks.codec.StringMessageCodec;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fan-out throughput of server broadcasts: every operation is one broadcast, completed once all the connected
+ * clients have received it. The delivered message rate is reported as the "messages" secondary result.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BroadcastBenchmark {
+    @Param({"10", "100", "1000"})
+    private int clients;
+
+    private Loopback<String> loopback;
+    private final AtomicLong delivered = new AtomicLong();
+    private long expectedDeliveries;
+
+    @Setup
+    public void setUp() throws IOException {
+        loopback = Loopback.start(clients, StringMessageCodec.getInstance(), StringMessageCodec.getInstance());
+        for (final Client<String> client : loopback.clients())
+            client.setMessageListener(message -> delivered.incrementAndGet());
+        expectedDeliveries = delivered.get();
+    }
+
+    @TearDown
+    public void tearDown() {
+        loopback.stop();
+    }
+
+    @Benchmark
+    public long broadcast(final Deliveries deliveries) {
+        final long expected = expectedDeliveries += clients;
+        loopback.server().broadcast(PAYLOAD);
+        Loopback.awaitUntil(() -> delivered.get() >= expected);
+        deliveries.messages += clients;
+        return expected;
+    }
+
+    private static final String PAYLOAD = "broadcast";
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Deliveries {
+        public long messages;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            messages = 0;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package aquelarre.benchmarks;
+
+import aquelarre.Envelope;
+import aquelarre.Header;
+import aquelarre.Node;
+import aquelarre.benchmarks.codec.BytesMessageCodec;
+import aquelarre.benchmarks.codec.StringMessageCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of rewriting envelope headers the way the server does while routing, and of encoding and decoding
+ * envelopes with the reference text and binary codecs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class FramingBenchmark {
+    @Param({"16", "1024"})
+    private int payloadSize;
+
+    private final String sender = UUID.randomUUID().toString();
+    private final String recipient = UUID.randomUUID().toString();
+    private Envelope<String> envelope;
+    private ByteArrayOutputStream buffer;
+    private DataOutputStream dataOutputStream;
+    private byte[] encoded;
+    private Envelope<byte[]> bytesEnvelope;
+    private byte[] bytesEncoded;
+
+    @Setup
+    public void setUp() throws IOException {
+        final char[] payload = new char[payloadSize];
+        Arrays.fill(payload, 'x');
+        envelope = Envelope.of(Header.of(Node.ME, Node.ALL), new String(payload));
+
+        buffer = new ByteArrayOutputStream(payloadSize * 2);
+        dataOutputStream = new DataOutputStream(buffer);
+        StringMessageCodec.getInstance().write(envelope, dataOutputStream);
+        encoded = buffer.toByteArray();
+
+        final byte[] bytesPayload = new byte[payloadSize];
+        Arrays.fill(bytesPayload, (byte) 'x');
+        bytesEnvelope = Envelope.of(Header.of(Node.ME, Node.ALL), bytesPayload);
+        buffer.reset();
+        BytesMessageCodec.getInstance().write(bytesEnvelope, dataOutputStream);
+        bytesEncoded = buffer.toByteArray();
+    }
+
+    @Benchmark
+    public Header headerWithFrom() {
+        return envelope.header().withFrom(sender);
+    }
+
+    @Benchmark
+    public Envelope<String> envelopeWithFrom() {
+        return envelope.withFrom(sender);
+    }
+
+    /**
+     * Both rewrites applied to every recipient of a client broadcast.
+     */
+    @Benchmark
+    public Envelope<String> envelopeWithFromAndTo() {
+        return envelope.withFrom(sender).withTo(recipient);
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        buffer.reset();
+        StringMessageCodec.getInstance().write(envelope, dataOutputStream);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public Envelope<String> decode() throws IOException {
+        return StringMessageCodec.getInstance().read(new DataInputStream(new ByteArrayInputStream(encoded)));
+    }
+
+    @Benchmark
+    public int encodeBytes() throws IOException {
+        buffer.reset();
+        BytesMessageCodec.getInstance().write(bytesEnvelope, dataOutputStream);
+        return buffer.size();
+    }
+
+    @Benchmark
+    public Envelope<byte[]> decodeBytes() throws IOException {
+        return BytesMessageCodec.getInstance().read(new DataInputStream(new ByteArrayInputStream(bytesEncoded)));
+    }
+}
@@ -0,0 +1,94 @@
+package aquelarre.benchmarks;
+
+import aquelarre.Client;
+import aquelarre.MessageReader;
+import aquelarre.MessageWriter;
+import aquelarre.Server;
+import aquelarre.routing.AllValidRoutingManager;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Server and clients connected over the loopback interface.
+ */
+class Loopback<T> {
+    private final Server<T> server;
+    private final List<Client<T>> clients;
+
+    private Loopback(final Server<T> server, final List<Client<T>> clients) {
+        this.server = server;
+        this.clients = clients;
+    }
+
+    static <X> Loopback<X> start(final int clientCount,
+                                 final MessageReader<X> messageReader,
+                                 final MessageWriter<X> messageWriter) throws IOException {
+        final int port = freePort();
+        final Server<X> server = Server.of(port, clientCount, false, messageReader, messageWriter,
+                AllValidRoutingManager.getInstance());
+        server.start();
+
+        final List<Client<X>> clients = new ArrayList<>(clientCount);
+        try {
+            for (int i = 0; i < clientCount; i++) {
+                final Client<X> client = Client.of(LOCALHOST, port, messageReader, messageWriter);
+                client.connect();
+                clients.add(client);
+            }
+        } catch (final IOException e) {
+            new Loopback<>(server, clients).stop();
+            throw e;
+        }
+        return new Loopback<>(server, clients);
+    }
+
+    Server<T> server() {
+        return server;
+    }
+
+    List<Client<T>> clients() {
+        return clients;
+    }
+
+    Client<T> client(final int index) {
+        return clients.get(index);
+    }
+
+    void stop() {
+        for (final Client<T> client : clients) {
+            try {
+                client.disconnect();
+            } catch (final Throwable ignore) {}
+        }
+        if (server.isRunning())
+            server.stop();
+    }
+
+    /**
+     * Waits until the condition holds, failing the benchmark instead of hanging it when messages get lost.
+     */
+    static void awaitUntil(final Condition condition) {
+        final long deadline = System.nanoTime() + AWAIT_TIMEOUT_NANOS;
+        while(!condition.holds()) {
+            if (System.nanoTime() - deadline > 0)
+                throw new IllegalStateException("Timed out waiting for message delivery");
+            Thread.yield();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    interface Condition {
+        boolean holds();
+    }
+
+    private static final String LOCALHOST = "127.0.0.1";
+    private static final long AWAIT_TIMEOUT_NANOS = 30_000_000_000L;
+}
@@ -0,0 +1,95 @@
+package aquelarre.benchmarks;
+
+import aquelarre.Envelope;
+import aquelarre.Header;
+import aquelarre.Node;
+import aquelarre.RoutingManager;
+import aquelarre.routing.AllInvalidRoutingManager;
+import aquelarre.routing.AllValidRoutingManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the routing checks the server runs for every message it forwards.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class RoutingBenchmark {
+    private final RoutingManager<String> allValid = AllValidRoutingManager.getInstance();
+    private final RoutingManager<String> allInvalid = AllInvalidRoutingManager.getInstance();
+    private RoutingManager<String> allowList;
+    private Envelope<String> unicast;
+    private Envelope<String> broadcast;
+
+    @Setup
+    public void setUp() {
+        final Set<String> allowed = new HashSet<>();
+        for (int i = 0; i < ALLOWED_NODES; i++)
+            allowed.add(UUID.randomUUID().toString());
+        final String from = allowed.iterator().next();
+        allowed.add(Node.SERVER);
+        allowList = new AllowListRoutingManager<>(allowed);
+
+        unicast = Envelope.of(Header.of(from, UUID.randomUUID().toString()), "payload");
+        broadcast = unicast.withTo(Node.ALL);
+    }
+
+    @Benchmark
+    public boolean allValid() {
+        return allValid.isValidRoute(unicast);
+    }
+
+    @Benchmark
+    public boolean allInvalid() {
+        return allInvalid.isValidRoute(unicast);
+    }
+
+    @Benchmark
+    public boolean allowList() {
+        return allowList.isValidRoute(unicast);
+    }
+
+    /**
+     * Classification the server does before routing a client message.
+     */
+    @Benchmark
+    public boolean classify() {
+        return broadcast.isBroadcast() || broadcast.wasSentToServer();
+    }
+
+    private static final int ALLOWED_NODES = 1000;
+
+    /**
+     * Reference routing manager doing a lookup per endpoint, as an application restricting who may talk would.
+     */
+    private static class AllowListRoutingManager<T> implements RoutingManager<T> {
+        private final Set<String> allowed;
+
+        AllowListRoutingManager(final Set<String> allowed) {
+            this.allowed = allowed;
+        }
+
+        @Override
+        public boolean isValidRoute(final Envelope<T> message) {
+            return allowed.contains(message.header().from())
+                    && (message.isBroadcast() || allowed.contains(message.header().to()));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package aquelarre.benchmarks;
+
+import aquelarre.Client;
+import aquelarre.benchmarks.codec.StringMessageCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Round-trip latency of a unicast message between two clients over loopback: the message travels client to
+ * server to client and the echo makes the same trip back.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(2)
+@State(Scope.Benchmark)
+public class UnicastBenchmark {
+    private Loopback<String> loopback;
+    private Client<String> sender;
+    private final AtomicLong echoes = new AtomicLong();
+    private long expectedEchoes;
+
+    @Setup
+    public void setUp() throws IOException {
+        loopback = Loopback.start(2, StringMessageCodec.getInstance(), StringMessageCodec.getInstance());
+        sender = loopback.client(0);
+        final Client<String> echo = loopback.client(1);
+
+        sender.setMessageListener(message -> echoes.incrementAndGet());
+        echo.setMessageListener(message -> {
+            try {
+                echo.send(message.header().from(), message.payload());
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        expectedEchoes = echoes.get();
+    }
+
+    @TearDown
+    public void tearDown() {
+        loopback.stop();
+    }
+
+    @Benchmark
+    public long roundTrip() throws IOException {
+        final long expected = ++expectedEchoes;
+        sender.send(loopback.client(1).nodeId(), PAYLOAD);
+        Loopback.awaitUntil(() -> echoes.get() >= expected);
+        return expected;
+    }
+
+    private static final String PAYLOAD = "ping";
+}
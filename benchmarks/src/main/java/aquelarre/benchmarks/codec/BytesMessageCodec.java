@@ -0,0 +1,40 @@
+package aquelarre.benchmarks.codec;
+
+import aquelarre.Envelope;
+import aquelarre.Header;
+import aquelarre.MessageReader;
+import aquelarre.MessageWriter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Reference codec for binary payloads: header as modified UTF-8 strings, payload length prefixed.
+ */
+public class BytesMessageCodec implements MessageReader<byte[]>, MessageWriter<byte[]> {
+    private static final BytesMessageCodec INSTANCE = new BytesMessageCodec();
+
+    private BytesMessageCodec() {}
+
+    @Override
+    public Envelope<byte[]> read(final DataInputStream dataInputStream) throws IOException {
+        final String from = dataInputStream.readUTF();
+        final String to = dataInputStream.readUTF();
+        final byte[] payload = new byte[dataInputStream.readInt()];
+        dataInputStream.readFully(payload);
+        return Envelope.of(Header.of(from, to), payload);
+    }
+
+    @Override
+    public void write(final Envelope<byte[]> message, final DataOutputStream dataOutputStream) throws IOException {
+        dataOutputStream.writeUTF(message.header().from());
+        dataOutputStream.writeUTF(message.header().to());
+        dataOutputStream.writeInt(message.payload().length);
+        dataOutputStream.write(message.payload());
+    }
+
+    public static BytesMessageCodec getInstance() {
+        return INSTANCE;
+    }
+}
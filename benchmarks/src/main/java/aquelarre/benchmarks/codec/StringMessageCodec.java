@@ -0,0 +1,37 @@
+package aquelarre.benchmarks.codec;
+
+import aquelarre.Envelope;
+import aquelarre.Header;
+import aquelarre.MessageReader;
+import aquelarre.MessageWriter;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Reference codec for text payloads: header and payload written as modified UTF-8 strings.
+ */
+public class StringMessageCodec implements MessageReader<String>, MessageWriter<String> {
+    private static final StringMessageCodec INSTANCE = new StringMessageCodec();
+
+    private StringMessageCodec() {}
+
+    @Override
+    public Envelope<String> read(final DataInputStream dataInputStream) throws IOException {
+        final String from = dataInputStream.readUTF();
+        final String to = dataInputStream.readUTF();
+        return Envelope.of(Header.of(from, to), dataInputStream.readUTF());
+    }
+
+    @Override
+    public void write(final Envelope<String> message, final DataOutputStream dataOutputStream) throws IOException {
+        dataOutputStream.writeUTF(message.header().from());
+        dataOutputStream.writeUTF(message.header().to());
+        dataOutputStream.writeUTF(message.payload());
+    }
+
+    public static StringMessageCodec getInstance() {
+        return INSTANCE;
+    }
+}
@@ -1,43 +1,88 @@
 package aquelarre;
 
+import aquelarre.logging.LogLevel;
+import aquelarre.metrics.ConnectionMetrics;
+import aquelarre.metrics.CountingInputStream;
+import aquelarre.metrics.CountingOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.util.UUID;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static aquelarre.Utils.safeCloseClientConnection;
 
 /**
  * TCP/IP Client
+ *
+ * The client keeps a resumable session with the server: when the connection is lost it reconnects following its
+ * {@link ReconnectPolicy}, keeps the same node id and retransmits the sent messages the server has not
+ * acknowledged yet.
  */
 public class Client<T> extends Node<T> {
-    private boolean connected;
+    private volatile boolean connected;
+    private volatile boolean online;
     private final String host;
     private final int port;
+    private final int replayBufferSize;
+    private final ReconnectPolicy reconnectPolicy;
+    private final Object sendLock = new Object();
+    private final Object stateLock = new Object();
+    private final Deque<PendingMessage<T>> replayBuffer = new ArrayDeque<>();
+    private final AtomicLong acknowledged = new AtomicLong();
+    private final ConnectionMetrics connectionMetrics = metrics().newConnection();
+    private long sentCount;
+    private volatile long sessionEpoch;
+    private String sessionToken;
+    private volatile String nodeId;
     private Socket socket;
-    private DataInputStream dataInputStream;
     private DataOutputStream dataOutputStream;
-    private Thread thread;
+    private volatile Thread thread;
     private AtomicInteger threadCount = new AtomicInteger();
 
     private Client(final String host, final int port,
+                   final int replayBufferSize,
+                   final ReconnectPolicy reconnectPolicy,
                    final MessageReader<T> messageReader,
                    final MessageWriter<T> messageWriter) {
         super(messageReader, messageWriter);
 
         Utils.validateHost(host);
         Utils.validatePortNumber(port);
+        if (replayBufferSize < 0)
+            throw new IllegalArgumentException("replayBufferSize");
+        if (reconnectPolicy == null)
+            throw new IllegalArgumentException("reconnectPolicy");
 
         this.host = host;
         this.port = port;
+        this.replayBufferSize = replayBufferSize;
+        this.reconnectPolicy = reconnectPolicy;
+    }
+
+    public static <X> Client<X> of(final String host, final int port,
+                                   final MessageReader<X> messageReader,
+                                   final MessageWriter<X> messageWriter) {
+        return of(host, port, DEFAULT_REPLAY_BUFFER_SIZE, ReconnectPolicy.defaultPolicy(),
+                messageReader, messageWriter);
     }
 
     public static <X> Client<X> of(final String host, final int port,
+                                   final int replayBufferSize,
+                                   final ReconnectPolicy reconnectPolicy,
                                    final MessageReader<X> messageReader,
                                    final MessageWriter<X> messageWriter) {
-        return new Client(host, port, messageReader, messageWriter);
+        return new Client(host, port, replayBufferSize, reconnectPolicy, messageReader, messageWriter);
     }
 
     public String host() {
@@ -48,33 +93,150 @@ public class Client<T> extends Node<T> {
         return port;
     }
 
+    public int replayBufferSize() {
+        return replayBufferSize;
+    }
+
+    public ReconnectPolicy reconnectPolicy() {
+        return reconnectPolicy;
+    }
+
+    /**
+     * Node id assigned by the server to this client's session, or null when not connected.
+     */
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Whether the session is open, even if the client is currently trying to reconnect.
+     */
     public boolean isConnected() {
         return connected;
     }
 
+    /**
+     * Whether the client currently has a live connection to the server.
+     */
+    public boolean isOnline() {
+        return online;
+    }
+
     public synchronized void connect() throws IOException {
         if (connected)
             throw new IllegalStateException("Already connected!");
 
-        socket = new Socket(host, port);
-        dataInputStream = new DataInputStream(socket.getInputStream());
-        dataOutputStream = new DataOutputStream(socket.getOutputStream());
-        thread = startClientThread();
-        connected = true;
-        thread.start();
+        final long epoch;
+        synchronized(stateLock) {
+            connected = true;
+            epoch = sessionEpoch;
+        }
+        try {
+            openSession(epoch);
+        } catch (final IOException e) {
+            endSession(epoch);
+            throw e;
+        }
+    }
+
+    /**
+     * Whether the given epoch still identifies the open session: once a session ends, threads started for it
+     * (possibly blocked in a connect or read that ignores interrupts) must not touch the next one.
+     */
+    private boolean isCurrent(final long epoch) {
+        return connected && epoch == sessionEpoch;
     }
 
-    private Thread startClientThread() {
+    /**
+     * Connects, performs the handshake and starts the reader thread of the new connection before retransmitting
+     * the unacknowledged messages, so that the server can send messages back while the replay is in progress.
+     */
+    private void openSession(final long epoch) throws IOException {
+        final Socket newSocket = new Socket();
+        try {
+            newSocket.connect(new InetSocketAddress(host, port), Protocol.HANDSHAKE_TIMEOUT_MILLIS);
+            newSocket.setSoTimeout(Protocol.HANDSHAKE_TIMEOUT_MILLIS);
+            newSocket.setTcpNoDelay(true);
+            final DataInputStream newDataInputStream = new DataInputStream(new BufferedInputStream(
+                    new CountingInputStream(newSocket.getInputStream(), connectionMetrics)));
+            final DataOutputStream newDataOutputStream = new DataOutputStream(new BufferedOutputStream(
+                    new CountingOutputStream(newSocket.getOutputStream(), connectionMetrics)));
+
+            final String requestedSessionToken;
+            synchronized(stateLock) {
+                if (!isCurrent(epoch))
+                    throw new IOException("Client was disconnected");
+                requestedSessionToken = sessionToken;
+            }
+            Protocol.writeHandshakeRequest(newDataOutputStream, requestedSessionToken);
+            final String newNodeId = newDataInputStream.readUTF();
+            final String newSessionToken = newDataInputStream.readUTF();
+            final long received = newDataInputStream.readLong();
+            newSocket.setSoTimeout(0);
+
+            synchronized(sendLock) {
+                final List<PendingMessage<T>> pending;
+                synchronized(stateLock) {
+                    if (!isCurrent(epoch))
+                        throw new IOException("Client was disconnected");
+
+                    if (newSessionToken.equals(requestedSessionToken)) {
+                        acknowledged.accumulateAndGet(received, Math::max);
+                        drainAcknowledged();
+                    } else {
+                        if (requestedSessionToken != null)
+                            log(LogLevel.WARN, "Session could not be resumed, new node id: ", newNodeId);
+                        acknowledged.set(0);
+                        restartSequence();
+                    }
+                    pending = new ArrayList<>(replayBuffer);
+
+                    socket = newSocket;
+                    dataOutputStream = newDataOutputStream;
+                    sessionToken = newSessionToken;
+                    nodeId = newNodeId;
+                    online = true;
+                    metrics().register(SERVER, connectionMetrics);
+                    thread = startClientThread(epoch, newSocket, newDataInputStream);
+                    thread.start();
+                }
+
+                // Still holding the send lock: new messages go out after the retransmitted ones
+                replay(pending, newSocket, newDataOutputStream);
+            }
+        } catch (final IOException e) {
+            safeCloseClientConnection(newSocket);
+            throw e;
+        }
+    }
+
+    private void replay(final List<PendingMessage<T>> pending, final Socket target,
+                        final DataOutputStream output) {
+        try {
+            for (final PendingMessage<T> pendingMessage : pending) {
+                writer().write(pendingMessage.message(), output);
+                connectionMetrics.messageSent();
+            }
+            output.flush();
+        } catch (final IOException e) {
+            // The reader thread of the connection notices the closed socket and resumes the session
+            log(LogLevel.INFO, "Error replaying messages: ", e);
+            goOffline(target);
+        }
+    }
+
+    private Thread startClientThread(final long epoch, final Socket source, final DataInputStream input) {
         final Thread thread = new Thread(() -> {
             try {
-                while(connected && socket.isConnected()) {
-                    final Envelope<T> message = reader().read(dataInputStream);
-                    if (message != null)
-                        notifyMessage(message);
-                }
+                readMessages(epoch, input);
             } catch (final Throwable t) {
-                System.out.println("Error in client connection: " + t);
-                safeCloseClientConnection(socket);
+                if (!isCurrent(epoch))
+                    return;
+
+                log(LogLevel.INFO, "Error in client connection: ", t);
+                goOffline(source);
+                if (!resumeSession(epoch))
+                    endSession(epoch);
             }
         });
 
@@ -85,15 +247,98 @@ public class Client<T> extends Node<T> {
         return thread;
     }
 
+    /**
+     * Reads until the session ends. Only the state lock is taken here, which is never held during I/O: senders may
+     * be blocked writing to the server while the server is blocked writing to this client.
+     */
+    private void readMessages(final long epoch, final DataInputStream input) throws IOException {
+        while(isCurrent(epoch)) {
+            final byte frameType = input.readByte();
+            if (frameType == Protocol.FRAME_ACK) {
+                final long received = input.readLong();
+                synchronized(stateLock) {
+                    if (epoch == sessionEpoch) {
+                        acknowledged.accumulateAndGet(received, Math::max);
+                        stateLock.notifyAll();
+                    }
+                }
+            } else if (frameType == Protocol.FRAME_MESSAGE) {
+                final Envelope<T> message = reader().read(input);
+                if (message != null) {
+                    connectionMetrics.messageReceived();
+                    notifyMessage(message);
+                }
+            } else {
+                throw new IOException("Unknown frame type: " + frameType);
+            }
+        }
+    }
+
+    private boolean resumeSession(final long epoch) {
+        for (int attempt = 0; attempt < reconnectPolicy.maxAttempts() && isCurrent(epoch); attempt++) {
+            try {
+                Thread.sleep(reconnectPolicy.delayMillis(attempt));
+            } catch (final InterruptedException e) {
+                return false;
+            }
+
+            try {
+                openSession(epoch);
+                return true;
+            } catch (final IOException e) {
+                log(LogLevel.INFO, "Error resuming client session: ", e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Closes the given connection if it is still the current one.
+     */
+    private void goOffline(final Socket target) {
+        synchronized(stateLock) {
+            if (target == null || target != socket)
+                return;
+
+            online = false;
+            safeCloseClientConnection(target);
+            stateLock.notifyAll();
+        }
+    }
+
+    private void endSession(final long epoch) {
+        synchronized(stateLock) {
+            if (epoch != sessionEpoch)
+                return;
+
+            sessionEpoch++;
+            connected = false;
+            online = false;
+            if (socket != null)
+                safeCloseClientConnection(socket);
+            socket = null;
+            dataOutputStream = null;
+            sessionToken = null;
+            nodeId = null;
+            replayBuffer.clear();
+            acknowledged.set(0);
+            sentCount = 0;
+            metrics().unregister(SERVER, connectionMetrics);
+            stateLock.notifyAll();
+        }
+    }
+
     public synchronized void disconnect() throws IOException {
         if (!connected)
             throw new IllegalStateException("Not connected!");
 
-        connected = false;
+        final long epoch;
+        synchronized(stateLock) {
+            connected = false;
+            epoch = sessionEpoch;
+        }
         stopClientThread();
-        safeCloseClientConnection(socket);
-        dataInputStream = null;
-        dataOutputStream = null;
+        endSession(epoch);
     }
 
     private void stopClientThread() {
@@ -119,6 +364,117 @@ public class Client<T> extends Node<T> {
         if (message == null)
             throw new IllegalArgumentException("message");
 
-        writer().write(Envelope.of(Header.of(ME, to), message), dataOutputStream);
+        final Envelope<T> envelope = Envelope.of(Header.of(ME, to), message);
+        // The send lock keeps the wire order equal to the sequence order; the state lock is never held during I/O
+        synchronized(sendLock) {
+            final boolean resumable = reconnectPolicy.isEnabled() && replayBufferSize > 0;
+            final Socket target;
+            final DataOutputStream output;
+            synchronized(stateLock) {
+                if (!connected)
+                    throw new IllegalStateException("Not connected!");
+                if (!online && !resumable)
+                    throw new IOException("Connection lost");
+
+                bufferMessage(envelope);
+                target = online ? socket : null;
+                output = online ? dataOutputStream : null;
+            }
+
+            if (output != null) {
+                final long start = System.nanoTime();
+                try {
+                    writer().write(envelope, output);
+                    output.flush();
+                    connectionMetrics.messageSent();
+                    metrics().writeLatency().recordSince(start);
+                } catch (final IOException e) {
+                    // The reader thread notices the closed socket and resumes the session
+                    goOffline(target);
+                    if (!resumable)
+                        throw e;
+                }
+            }
+        }
+    }
+
+    @Override
+    protected long openConnections() {
+        return online ? 1 : 0;
+    }
+
+    /**
+     * Sent messages waiting in the replay buffer for the server to acknowledge them.
+     */
+    @Override
+    protected long queueDepth() {
+        synchronized(stateLock) {
+            drainAcknowledged();
+            return replayBuffer.size();
+        }
+    }
+
+    private void bufferMessage(final Envelope<T> message) throws IOException {
+        drainAcknowledged();
+        if (replayBufferSize == 0) {
+            sentCount++;
+            return;
+        }
+
+        // Unacknowledged messages are never evicted: while online wait for the server to acknowledge some
+        final long epoch = sessionEpoch;
+        while(replayBuffer.size() >= replayBufferSize) {
+            if (!isCurrent(epoch))
+                throw new IOException("Client was disconnected");
+            if (!online)
+                throw new IOException("Replay buffer is full");
+
+            try {
+                stateLock.wait();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the replay buffer");
+            }
+            drainAcknowledged();
+        }
+        // Only accepted messages take a sequence number, so it keeps matching the server's received count
+        replayBuffer.addLast(new PendingMessage<>(++sentCount, message));
+    }
+
+    /**
+     * Drops the buffered messages acknowledged by the server, as recorded by the reader thread.
+     */
+    private void drainAcknowledged() {
+        final long received = acknowledged.get();
+        while(!replayBuffer.isEmpty() && replayBuffer.peekFirst().sequence() <= received)
+            replayBuffer.pollFirst();
+    }
+
+    private void restartSequence() {
+        final Deque<PendingMessage<T>> pending = new ArrayDeque<>(replayBuffer);
+        replayBuffer.clear();
+        sentCount = 0;
+        for (final PendingMessage<T> pendingMessage : pending)
+            replayBuffer.addLast(new PendingMessage<>(++sentCount, pendingMessage.message()));
+    }
+
+    private static final int DEFAULT_REPLAY_BUFFER_SIZE = 1024;
+
+    private static class PendingMessage<T> {
+        private final long sequence;
+        private final Envelope<T> message;
+
+        public PendingMessage(final long sequence, final Envelope<T> message) {
+            this.sequence = sequence;
+            this.message = message;
+        }
+
+        public long sequence() {
+            return sequence;
+        }
+
+        public Envelope<T> message() {
+            return message;
+        }
     }
 }
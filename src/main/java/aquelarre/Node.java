@@ -1,5 +1,10 @@
 package aquelarre;
 
+import aquelarre.logging.ConsoleLogger;
+import aquelarre.logging.LogLevel;
+import aquelarre.logging.Logger;
+import aquelarre.metrics.NodeMetrics;
+
 import java.io.IOException;
 import java.util.UUID;
 
@@ -10,6 +15,8 @@ public abstract class Node<T> {
     private final MessageReader<T> messageReader;
     private final MessageWriter<T> messageWriter;
     private MessageListener<T> messageListener;
+    private volatile Logger logger = ConsoleLogger.getInstance();
+    private final NodeMetrics metrics;
 
     protected Node(final MessageReader<T> messageReader, final MessageWriter<T> messageWriter) {
         if (messageReader == null)
@@ -19,6 +26,7 @@ public abstract class Node<T> {
 
         this.messageReader = messageReader;
         this.messageWriter = messageWriter;
+        this.metrics = NodeMetrics.of(getClass().getSimpleName(), this::openConnections, this::queueDepth);
     }
 
     public MessageListener<T> getMessageListener() {
@@ -29,6 +37,24 @@ public abstract class Node<T> {
         this.messageListener = messageListener;
     }
 
+    public Logger getLogger() {
+        return logger;
+    }
+
+    public void setLogger(final Logger logger) {
+        if (logger == null)
+            throw new IllegalArgumentException("logger");
+
+        this.logger = logger;
+    }
+
+    /**
+     * Metrics of this node, see {@link NodeMetrics#registerMBean(String)} to expose them via JMX.
+     */
+    public NodeMetrics metrics() {
+        return metrics;
+    }
+
     /**
      * Send a message to every other client through the same server this node is connected to.
      */
@@ -47,17 +73,43 @@ public abstract class Node<T> {
         return messageWriter;
     }
 
+    /**
+     * Number of connections currently open by this node.
+     */
+    protected long openConnections() {
+        return 0;
+    }
+
+    /**
+     * Number of items waiting to be processed by this node.
+     */
+    protected long queueDepth() {
+        return 0;
+    }
+
     protected void notifyMessage(final Envelope<T> message) {
         final MessageListener<T> theListener = messageListener;
         if (theListener != null) {
+            final long start = System.nanoTime();
             try {
                 theListener.onMessage(message);
             } catch (final Throwable t) {
-                System.out.println("Error while notifying message: " + t);
+                log(LogLevel.ERROR, "Error while notifying message: ", t);
+            } finally {
+                metrics.dispatchLatency().recordSince(start);
             }
         }
     }
 
+    /**
+     * Logs the message followed by the detail, building the text only when the level is enabled.
+     */
+    protected void log(final LogLevel level, final String message, final Object detail) {
+        final Logger theLogger = logger;
+        if (theLogger.isEnabled(level))
+            theLogger.log(level, message + detail, detail instanceof Throwable ? (Throwable) detail : null);
+    }
+
     public static final String ALL = "*";
     public static final String SERVER = "s";
     public static final String ME = "m";
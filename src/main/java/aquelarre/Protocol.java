@@ -0,0 +1,54 @@
+package aquelarre;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Session handshake and framing shared by server and clients.
+ *
+ * On connect the client sends its session token (empty for a new session) and the server answers with the
+ * node id, the (possibly new) session token and the number of frames it has already received on that session.
+ * From then on every server to client frame is prefixed with a one byte tag: either a codec frame or an
+ * acknowledgement carrying the count of client frames received so far, sent every {@link #ACK_INTERVAL} frames and
+ * shortly after the client stops sending.
+ */
+final class Protocol {
+    private Protocol() {}
+
+    static void writeHandshakeRequest(final DataOutputStream dataOutputStream,
+                                      final String sessionToken) throws IOException {
+        dataOutputStream.writeUTF(sessionToken == null ? NO_SESSION : sessionToken);
+        dataOutputStream.flush();
+    }
+
+    static String readHandshakeRequest(final DataInputStream dataInputStream) throws IOException {
+        return dataInputStream.readUTF();
+    }
+
+    static void writeHandshakeResponse(final DataOutputStream dataOutputStream, final String nodeId,
+                                       final String sessionToken, final long received) throws IOException {
+        dataOutputStream.writeUTF(nodeId);
+        dataOutputStream.writeUTF(sessionToken);
+        dataOutputStream.writeLong(received);
+        dataOutputStream.flush();
+    }
+
+    static final String NO_SESSION = "";
+
+    static final byte FRAME_MESSAGE = 0;
+    static final byte FRAME_ACK = 1;
+
+    /**
+     * Maximum number of client frames received between two acknowledgements sent by the server.
+     */
+    static final int ACK_INTERVAL = 32;
+
+    /**
+     * Once a client stops sending, its pending acknowledgement goes out with the next frame written to it or, at
+     * the latest, after this delay, so an idle client never keeps delivered frames in its replay buffer.
+     */
+    static final int ACK_DELAY_MILLIS = 5;
+
+    static final int HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+}
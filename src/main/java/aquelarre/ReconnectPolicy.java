@@ -0,0 +1,70 @@
+package aquelarre;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff policy used by clients to resume their session after losing the connection.
+ */
+public class ReconnectPolicy {
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final int maxAttempts;
+
+    private ReconnectPolicy(final long initialDelayMillis, final long maxDelayMillis, final int maxAttempts) {
+        if (initialDelayMillis < 0)
+            throw new IllegalArgumentException("initialDelayMillis");
+        if (maxDelayMillis < initialDelayMillis)
+            throw new IllegalArgumentException("maxDelayMillis");
+        if (maxAttempts < 0)
+            throw new IllegalArgumentException("maxAttempts");
+
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxAttempts = maxAttempts;
+    }
+
+    public static ReconnectPolicy of(final long initialDelayMillis, final long maxDelayMillis,
+                                     final int maxAttempts) {
+        return new ReconnectPolicy(initialDelayMillis, maxDelayMillis, maxAttempts);
+    }
+
+    public static ReconnectPolicy none() {
+        return NONE;
+    }
+
+    public static ReconnectPolicy defaultPolicy() {
+        return DEFAULT;
+    }
+
+    public long initialDelayMillis() {
+        return initialDelayMillis;
+    }
+
+    public long maxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    public boolean isEnabled() {
+        return maxAttempts > 0;
+    }
+
+    /**
+     * Delay before the given (zero based) attempt: doubles on every attempt up to the maximum delay, half of
+     * it randomized so that clients dropped at the same time do not come back all at once.
+     */
+    public long delayMillis(final int attempt) {
+        final long exponential = initialDelayMillis << Math.min(attempt, 30);
+        final long capped = exponential < 0 ? maxDelayMillis : Math.min(exponential, maxDelayMillis);
+        final long half = capped / 2;
+        return half + (half > 0 ? ThreadLocalRandom.current().nextLong(half + 1) : 0);
+    }
+
+    public static final int UNLIMITED_ATTEMPTS = Integer.MAX_VALUE;
+
+    private static final ReconnectPolicy NONE = new ReconnectPolicy(0, 0, 0);
+    private static final ReconnectPolicy DEFAULT = new ReconnectPolicy(250, 30_000, UNLIMITED_ATTEMPTS);
+}
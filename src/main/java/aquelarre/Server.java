@@ -1,22 +1,39 @@
 package aquelarre;
 
+import aquelarre.logging.LogLevel;
+import aquelarre.metrics.ConnectionMetrics;
+import aquelarre.metrics.CountingInputStream;
+import aquelarre.metrics.CountingOutputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static aquelarre.Utils.safeCloseClientConnection;
 
 /**
  * Message based multi-client TCP/IP Server
+ *
+ * Every client connection belongs to a session identified by a token: a client reconnecting with the token of a
+ * session that has not expired yet takes over that session and keeps its node id.
  */
 public class Server<T> extends Node<T> {
     private final int port;
@@ -25,10 +42,14 @@ public class Server<T> extends Node<T> {
     private boolean running;
     private ServerSocket serverSocket;
     private Thread clientAcceptorThread;
+    private ScheduledExecutorService ackFlusher;
+    private final Queue<ClientConnection> pendingAcks = new ConcurrentLinkedQueue<>();
     private final Map<Socket, ClientConnection> clientConnections = new HashMap<>();
     private final Map<UUID, ClientConnection> clientConnectionsById = new HashMap<>();
+    private final Map<String, Session> sessions = new HashMap<>();
+    private long sessionTimeoutMillis = DEFAULT_SESSION_TIMEOUT_MILLIS;
     private AtomicInteger threadCount = new AtomicInteger();
-    private final ExecutorService clientHandlersPool;
+    private final ThreadPoolExecutor clientHandlersPool;
     private final int maxClients;
     private final RoutingManager<T> routingManager;
 
@@ -74,9 +95,9 @@ public class Server<T> extends Node<T> {
             throw new IllegalStateException("Server was already started!");
 
         serverSocket = new ServerSocket(port);
-        startClientAcceptor();
         running = true;
-
+        startAckFlusher();
+        startClientAcceptor();
     }
 
     public synchronized void stop() {
@@ -85,8 +106,12 @@ public class Server<T> extends Node<T> {
 
         running = false;
         stopAcceptorThread();
+        ackFlusher.shutdownNow();
         clientHandlersPool.shutdownNow();
-        clientConnections.keySet().forEach(Utils::safeCloseClientConnection);
+        clientConnectionsCopy().keySet().forEach(Utils::safeCloseClientConnection);
+        synchronized(sessions) {
+            sessions.clear();
+        }
     }
 
     public RoutingManager<T> getRoutingManager() {
@@ -101,6 +126,20 @@ public class Server<T> extends Node<T> {
         this.includeSenderInBroadcasts = includeSenderInBroadcasts;
     }
 
+    public long getSessionTimeoutMillis() {
+        return sessionTimeoutMillis;
+    }
+
+    /**
+     * How long the session of a disconnected client is kept so that the client can resume it.
+     */
+    public void setSessionTimeoutMillis(final long sessionTimeoutMillis) {
+        if (sessionTimeoutMillis < 0)
+            throw new IllegalArgumentException("sessionTimeoutMillis");
+
+        this.sessionTimeoutMillis = sessionTimeoutMillis;
+    }
+
     private void stopAcceptorThread() {
         try {
             clientAcceptorThread.interrupt();
@@ -120,7 +159,7 @@ public class Server<T> extends Node<T> {
             if (target != null)
                 writeMessage(envelope, target);
         } else {
-            System.out.println("Invalid routing for message: " + envelope);
+            rejectRoute(envelope);
         }
     }
 
@@ -134,7 +173,7 @@ public class Server<T> extends Node<T> {
             if (routingManager.isValidRoute(envelope))
                 safeWriteMessage(envelope, clientConnection);
             else
-                System.out.println("Invalid routing for message: " + envelope);
+                rejectRoute(envelope);
         }
     }
 
@@ -142,12 +181,68 @@ public class Server<T> extends Node<T> {
         try {
             writeMessage(message, clientConnection);
         } catch (final Throwable t) {
-            System.out.println("Error sending message to client: " + t);
+            log(LogLevel.WARN, "Error sending message to client: ", t);
         }
     }
 
+    /**
+     * Writes the message, preceded by any pending acknowledgement, with a single flush of the buffered stream.
+     */
     private void writeMessage(final Envelope<T> message, final ClientConnection clientConnection) throws IOException {
-        writer().write(message, clientConnection.dataOutputStream());
+        final long start = System.nanoTime();
+        final DataOutputStream dataOutputStream = clientConnection.dataOutputStream();
+        synchronized(dataOutputStream) {
+            clientConnection.writePendingAck();
+            dataOutputStream.writeByte(Protocol.FRAME_MESSAGE);
+            writer().write(message, dataOutputStream);
+            dataOutputStream.flush();
+        }
+        clientConnection.metrics().messageSent();
+        metrics().writeLatency().recordSince(start);
+    }
+
+    private void flushAck(final ClientConnection clientConnection) throws IOException {
+        final DataOutputStream dataOutputStream = clientConnection.dataOutputStream();
+        synchronized(dataOutputStream) {
+            if (clientConnection.writePendingAck())
+                dataOutputStream.flush();
+        }
+    }
+
+    /**
+     * Acknowledges the messages received from the client: right away every {@link Protocol#ACK_INTERVAL}
+     * messages, otherwise once the client stops sending, either along with the next message written to it or
+     * by the ack flusher.
+     */
+    private void acknowledge(final long received, final ClientConnection clientConnection) throws IOException {
+        clientConnection.received(received);
+        if (clientConnection.unacknowledged() >= Protocol.ACK_INTERVAL)
+            flushAck(clientConnection);
+        else if (clientConnection.dataInputStream().available() == 0 && clientConnection.scheduleAck())
+            pendingAcks.add(clientConnection);
+    }
+
+    private void startAckFlusher() {
+        ackFlusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread newThread = new Thread(r, "Ack Flusher Thread");
+            newThread.setDaemon(true);
+            return newThread;
+        });
+        ackFlusher.scheduleWithFixedDelay(this::flushPendingAcks, Protocol.ACK_DELAY_MILLIS,
+                Protocol.ACK_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushPendingAcks() {
+        ClientConnection clientConnection;
+        while((clientConnection = pendingAcks.poll()) != null) {
+            clientConnection.ackFlushed();
+            try {
+                flushAck(clientConnection);
+            } catch (final Throwable t) {
+                // The client handler notices the broken connection
+                log(LogLevel.DEBUG, "Error acknowledging client messages: ", t);
+            }
+        }
     }
 
     private Map<Socket, ClientConnection> clientConnectionsCopy() {
@@ -162,8 +257,8 @@ public class Server<T> extends Node<T> {
         }
     }
 
-    private ExecutorService configureClientHandlersPool() {
-        return Executors.newFixedThreadPool(maxClients, r -> {
+    private ThreadPoolExecutor configureClientHandlersPool() {
+        return new ThreadPoolExecutor(maxClients, maxClients, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
             final Thread newThread = new Thread(r, String.format("Client Processor Thread #%d",
                     threadCount.getAndIncrement()));
             newThread.setDaemon(true);
@@ -177,9 +272,9 @@ public class Server<T> extends Node<T> {
                 try {
                     final Socket clientSocket = serverSocket.accept();
                     startClientHandler(clientSocket);
-                    System.out.println("Client connected!");
+                    log(LogLevel.INFO, "Client connected: ", clientSocket.getRemoteSocketAddress());
                 } catch (final Throwable t) {
-                    System.out.println("Error accepting new client connection: " + t);
+                    log(LogLevel.WARN, "Error accepting new client connection: ", t);
                 }
             }
         });
@@ -188,58 +283,134 @@ public class Server<T> extends Node<T> {
         clientAcceptorThread.start();
     }
 
-    private void startClientHandler(final Socket clientSocket) throws IOException {
-        final ClientConnection clientConnection = new ClientConnection(UUID.randomUUID(), clientSocket);
+    private void startClientHandler(final Socket clientSocket) {
         clientHandlersPool.submit(() -> {
+            ClientConnection clientConnection = null;
             try {
+                clientConnection = openClientConnection(clientSocket);
                 while(clientSocket.isConnected()) {
                     final Envelope<T> message = reader().read(clientConnection.dataInputStream());
                     if (message != null) {
-                        final Envelope<T> rewrittenFrom = message.withFrom(actualIdentification(clientConnection));
-                        if (rewrittenFrom.isBroadcast()) {
-                            final Envelope<T> toServer = rewrittenFrom.withTo(SERVER);
-                            if (routingManager.isValidRoute(toServer)) {
-                                notifyMessage(toServer);
-                            } else {
-                                System.out.println("Invalid routing for message: " + toServer);
-                            }
-
-                            for (final ClientConnection c : clientConnectionsCopy().values()) {
-                                if (includeSenderInBroadcasts || !c.equals(clientConnection)) {
-                                    final Envelope<T> rewrittenTo = rewrittenFrom.withTo(actualIdentification(c));
-                                    if (routingManager.isValidRoute(rewrittenTo)) {
-                                        safeWriteMessage(rewrittenTo, c);
-                                    } else {
-                                        System.out.println("Invalid routing for message: " + rewrittenTo);
-                                    }
-                                }
-                            }
-                        } else {
-                            if (rewrittenFrom.wasSentToServer()) {
-                                if (routingManager.isValidRoute(rewrittenFrom)) {
-                                    notifyMessage(rewrittenFrom);
-                                } else {
-                                    System.out.println("Invalid routing for message: " + rewrittenFrom);
-                                }
-                            } else {
-                                if (routingManager.isValidRoute(rewrittenFrom)) {
-                                    final ClientConnection target = getClientConnectionByNodeIdOrLogin(rewrittenFrom.header().to());
-                                    if (target != null)
-                                        safeWriteMessage(rewrittenFrom, target);
-                                } else {
-                                    System.out.println("Invalid routing for message: " + rewrittenFrom);
-                                }
-                            }
-                        }
+                        clientConnection.metrics().messageReceived();
+                        final long received = clientConnection.session().received(clientConnection);
+                        if (received < 0)
+                            throw new IOException("Session was resumed by another connection");
+
+                        processMessage(message, clientConnection);
+                        acknowledge(received, clientConnection);
                     }
                 }
             } catch (final Throwable t) {
-                System.out.println("Error in client connection: " + t);
+                log(LogLevel.INFO, "Error in client connection: ", t);
                 safeCloseClientConnection(clientSocket);
-                unregisterClientConnection(clientConnection);
+                if (clientConnection != null) {
+                    unregisterClientConnection(clientConnection);
+                    clientConnection.session().detach(clientConnection);
+                }
             }
         });
+    }
+
+    private ClientConnection openClientConnection(final Socket clientSocket) throws IOException {
+        final ConnectionMetrics connectionMetrics = metrics().newConnection();
+        clientSocket.setTcpNoDelay(true);
+        final DataInputStream dataInputStream = new DataInputStream(new BufferedInputStream(
+                new CountingInputStream(clientSocket.getInputStream(), connectionMetrics)));
+        final DataOutputStream dataOutputStream = new DataOutputStream(new BufferedOutputStream(
+                new CountingOutputStream(clientSocket.getOutputStream(), connectionMetrics)));
+
+        clientSocket.setSoTimeout(Protocol.HANDSHAKE_TIMEOUT_MILLIS);
+        final Session session = resumeOrCreateSession(Protocol.readHandshakeRequest(dataInputStream));
+        final ClientConnection clientConnection = new ClientConnection(session, clientSocket,
+                dataInputStream, dataOutputStream, connectionMetrics);
+
+        // Attaching first freezes the received count of a replaced connection before it is reported
+        final ClientConnection previous = session.attach(clientConnection);
+        if (previous != null) {
+            safeCloseClientConnection(previous.socket());
+            unregisterClientConnection(previous);
+        }
+
+        // Not registered yet, so no broadcast can write ahead of the handshake response
+        boolean handshakeCompleted = false;
+        try {
+            Protocol.writeHandshakeResponse(dataOutputStream, session.id().toString(), session.token(),
+                    session.receivedSoFar());
+            clientSocket.setSoTimeout(0);
+            handshakeCompleted = true;
+        } finally {
+            if (!handshakeCompleted)
+                session.detach(clientConnection);
+        }
+
         registerClientConnection(clientConnection);
+        return clientConnection;
+    }
+
+    private Session resumeOrCreateSession(final String sessionToken) {
+        synchronized(sessions) {
+            removeExpiredSessions();
+            final Session existing = sessions.get(sessionToken);
+            if (existing != null)
+                return existing;
+
+            final Session session = new Session(UUID.randomUUID(), UUID.randomUUID().toString());
+            sessions.put(session.token(), session);
+            return session;
+        }
+    }
+
+    private void removeExpiredSessions() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Session> iterator = sessions.values().iterator();
+        while(iterator.hasNext()) {
+            if (iterator.next().isExpired(now, sessionTimeoutMillis))
+                iterator.remove();
+        }
+    }
+
+    private void processMessage(final Envelope<T> message, final ClientConnection clientConnection) {
+        final Envelope<T> rewrittenFrom = message.withFrom(actualIdentification(clientConnection));
+        if (rewrittenFrom.isBroadcast()) {
+            final Envelope<T> toServer = rewrittenFrom.withTo(SERVER);
+            if (routingManager.isValidRoute(toServer)) {
+                notifyMessage(toServer);
+            } else {
+                rejectRoute(toServer);
+            }
+
+            for (final ClientConnection c : clientConnectionsCopy().values()) {
+                if (includeSenderInBroadcasts || !c.equals(clientConnection)) {
+                    final Envelope<T> rewrittenTo = rewrittenFrom.withTo(actualIdentification(c));
+                    if (routingManager.isValidRoute(rewrittenTo)) {
+                        safeWriteMessage(rewrittenTo, c);
+                    } else {
+                        rejectRoute(rewrittenTo);
+                    }
+                }
+            }
+        } else {
+            if (rewrittenFrom.wasSentToServer()) {
+                if (routingManager.isValidRoute(rewrittenFrom)) {
+                    notifyMessage(rewrittenFrom);
+                } else {
+                    rejectRoute(rewrittenFrom);
+                }
+            } else {
+                if (routingManager.isValidRoute(rewrittenFrom)) {
+                    final ClientConnection target = getClientConnectionByNodeIdOrLogin(rewrittenFrom.header().to());
+                    if (target != null)
+                        safeWriteMessage(rewrittenFrom, target);
+                } else {
+                    rejectRoute(rewrittenFrom);
+                }
+            }
+        }
+    }
+
+    private void rejectRoute(final Envelope<T> message) {
+        metrics().routingRejected();
+        log(LogLevel.DEBUG, "Invalid routing for message: ", message);
     }
 
     private String actualIdentification(final ClientConnection clientConnection) {
@@ -258,38 +429,131 @@ public class Server<T> extends Node<T> {
                 throw new RuntimeException("Authenticated server mode not implemented yet!");
             }
         } catch (final Throwable t) {
-            System.out.println("Error identifying client connection: " + t);
+            log(LogLevel.WARN, "Error identifying client connection: ", t);
             return null;
         }
     }
 
     private void unregisterClientConnection(final ClientConnection clientConnection) {
-        clientConnections.remove(clientConnection);
-        clientConnectionsById.remove(clientConnection.id());
+        synchronized(clientConnections) {
+            clientConnections.remove(clientConnection.socket(), clientConnection);
+        }
+        synchronized(clientConnectionsById) {
+            clientConnectionsById.remove(clientConnection.id(), clientConnection);
+        }
+        metrics().unregister(clientConnection.id().toString(), clientConnection.metrics());
     }
 
     private void registerClientConnection(final ClientConnection clientConnection) {
-        clientConnections.put(clientConnection.socket(), clientConnection);
-        clientConnectionsById.put(clientConnection.id(), clientConnection);
+        synchronized(clientConnections) {
+            clientConnections.put(clientConnection.socket(), clientConnection);
+        }
+        synchronized(clientConnectionsById) {
+            clientConnectionsById.put(clientConnection.id(), clientConnection);
+        }
+        metrics().register(clientConnection.id().toString(), clientConnection.metrics());
+    }
+
+    @Override
+    protected long openConnections() {
+        synchronized(clientConnections) {
+            return clientConnections.size();
+        }
+    }
+
+    /**
+     * Accepted clients waiting for a free client handler thread.
+     */
+    @Override
+    protected long queueDepth() {
+        return clientHandlersPool.getQueue().size();
     }
 
     private static final int DEFAULT_MAX_CLIENTS = 100;
+    private static final long DEFAULT_SESSION_TIMEOUT_MILLIS = 60_000;
 
-    private static class ClientConnection {
+    private static class Session {
         private final UUID id;
+        private final String token;
+        private long received;
+        private ClientConnection connection;
+        private long detachedAt;
+
+        public Session(final UUID id, final String token) {
+            this.id = id;
+            this.token = token;
+        }
+
+        public UUID id() {
+            return id;
+        }
+
+        public String token() {
+            return token;
+        }
+
+        /**
+         * Makes the given connection the current one for this session, returning the one it replaces (if any).
+         */
+        public synchronized ClientConnection attach(final ClientConnection clientConnection) {
+            final ClientConnection previous = connection;
+            connection = clientConnection;
+            return previous;
+        }
+
+        public synchronized void detach(final ClientConnection clientConnection) {
+            if (connection == clientConnection) {
+                connection = null;
+                detachedAt = System.currentTimeMillis();
+            }
+        }
+
+        public synchronized long receivedSoFar() {
+            return received;
+        }
+
+        /**
+         * Counts a message received through the given connection, returning the new count or -1 when the
+         * connection no longer owns this session (the message is then dropped and replayed by the client).
+         */
+        public synchronized long received(final ClientConnection clientConnection) {
+            if (connection != clientConnection)
+                return -1;
+            return ++received;
+        }
+
+        public synchronized boolean isExpired(final long now, final long timeoutMillis) {
+            return connection == null && now - detachedAt > timeoutMillis;
+        }
+    }
+
+    private static class ClientConnection {
+        private final Session session;
         private final Socket socket;
         private final DataInputStream dataInputStream;
         private final DataOutputStream dataOutputStream;
-
-        public ClientConnection(final UUID id, final Socket socket) throws IOException {
-            this.id = id;
+        private final ConnectionMetrics metrics;
+        private final AtomicBoolean ackScheduled = new AtomicBoolean();
+        private volatile long received;
+        private long acknowledged;
+
+        public ClientConnection(final Session session, final Socket socket,
+                                final DataInputStream dataInputStream,
+                                final DataOutputStream dataOutputStream,
+                                final ConnectionMetrics metrics) {
+            this.session = session;
             this.socket = socket;
-            this.dataInputStream = new DataInputStream(socket.getInputStream());
-            this.dataOutputStream = new DataOutputStream(socket.getOutputStream());
+            this.dataInputStream = dataInputStream;
+            this.dataOutputStream = dataOutputStream;
+            this.metrics = metrics;
+        }
+
+        public Session session() {
+            return session;
         }
 
         public UUID id() {
-            return id;
+            return session.id();
         }
 
         public Socket socket() {
@@ -304,6 +568,47 @@ public class Server<T> extends Node<T> {
             return dataOutputStream;
         }
 
+        public ConnectionMetrics metrics() {
+            return metrics;
+        }
+
+        /**
+         * Records the count of client messages received so far (only called by the client handler).
+         */
+        public void received(final long received) {
+            this.received = received;
+        }
+
+        public synchronized long unacknowledged() {
+            return received - acknowledged;
+        }
+
+        /**
+         * Whether the ack flusher should take care of this connection, false if it is already scheduled.
+         */
+        public boolean scheduleAck() {
+            return ackScheduled.compareAndSet(false, true);
+        }
+
+        public void ackFlushed() {
+            ackScheduled.set(false);
+        }
+
+        /**
+         * Writes (without flushing) an acknowledgement frame if there are unacknowledged messages. Must be called
+         * holding the output stream lock.
+         */
+        public synchronized boolean writePendingAck() throws IOException {
+            final long theReceived = received;
+            if (theReceived <= acknowledged)
+                return false;
+
+            dataOutputStream.writeByte(Protocol.FRAME_ACK);
+            dataOutputStream.writeLong(theReceived);
+            acknowledged = theReceived;
+            return true;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
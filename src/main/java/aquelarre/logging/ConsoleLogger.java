@@ -0,0 +1,41 @@
+package aquelarre.logging;
+
+/**
+ * Logs to the standard output messages at or above a given level, followed by the stack trace of their error.
+ */
+public class ConsoleLogger implements Logger {
+    private static final ConsoleLogger DEFAULT = new ConsoleLogger(LogLevel.WARN);
+
+    private final LogLevel threshold;
+
+    private ConsoleLogger(final LogLevel threshold) {
+        if (threshold == null)
+            throw new IllegalArgumentException("threshold");
+
+        this.threshold = threshold;
+    }
+
+    public static ConsoleLogger of(final LogLevel threshold) {
+        return new ConsoleLogger(threshold);
+    }
+
+    public static ConsoleLogger getInstance() {
+        return DEFAULT;
+    }
+
+    public LogLevel threshold() {
+        return threshold;
+    }
+
+    @Override
+    public boolean isEnabled(final LogLevel level) {
+        return level.isEnabledFor(threshold);
+    }
+
+    @Override
+    public void log(final LogLevel level, final String message, final Throwable error) {
+        System.out.println(String.format("[%s] [%s] %s", level, Thread.currentThread().getName(), message));
+        if (error != null)
+            error.printStackTrace(System.out);
+    }
+}
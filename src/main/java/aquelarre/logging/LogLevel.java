@@ -0,0 +1,18 @@
+package aquelarre.logging;
+
+/**
+ * Log levels, from the most to the least severe.
+ */
+public enum LogLevel {
+    ERROR,
+    WARN,
+    INFO,
+    DEBUG;
+
+    /**
+     * Whether messages at this level pass a logger configured with the given threshold.
+     */
+    public boolean isEnabledFor(final LogLevel threshold) {
+        return ordinal() <= threshold.ordinal();
+    }
+}
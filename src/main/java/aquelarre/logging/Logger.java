@@ -0,0 +1,11 @@
+package aquelarre.logging;
+
+/**
+ * Logging hook for nodes. Callers check {@link #isEnabled(LogLevel)} before building a message, so disabled levels
+ * cost nothing but that check.
+ */
+public interface Logger {
+    boolean isEnabled(final LogLevel level);
+
+    void log(final LogLevel level, final String message, final Throwable error);
+}
@@ -0,0 +1,19 @@
+package aquelarre.logging;
+
+public class SilentLogger implements Logger {
+    private static final SilentLogger INSTANCE = new SilentLogger();
+
+    private SilentLogger() {}
+
+    @Override
+    public boolean isEnabled(final LogLevel level) {
+        return false;
+    }
+
+    @Override
+    public void log(final LogLevel level, final String message, final Throwable error) {}
+
+    public static SilentLogger getInstance() {
+        return INSTANCE;
+    }
+}
@@ -0,0 +1,54 @@
+package aquelarre.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Traffic counters of a single connection, also added to the totals of the node owning it.
+ */
+public class ConnectionMetrics {
+    private final NodeMetrics nodeMetrics;
+    private final LongAdder messagesIn = new LongAdder();
+    private final LongAdder messagesOut = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    ConnectionMetrics(final NodeMetrics nodeMetrics) {
+        this.nodeMetrics = nodeMetrics;
+    }
+
+    public void messageReceived() {
+        messagesIn.increment();
+        nodeMetrics.messagesIn.increment();
+    }
+
+    public void messageSent() {
+        messagesOut.increment();
+        nodeMetrics.messagesOut.increment();
+    }
+
+    public void bytesReceived(final long bytes) {
+        bytesIn.add(bytes);
+        nodeMetrics.bytesIn.add(bytes);
+    }
+
+    public void bytesSent(final long bytes) {
+        bytesOut.add(bytes);
+        nodeMetrics.bytesOut.add(bytes);
+    }
+
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    public long getMessagesOut() {
+        return messagesOut.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+}
@@ -0,0 +1,45 @@
+package aquelarre.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from a connection.
+ */
+public class CountingInputStream extends FilterInputStream {
+    private final ConnectionMetrics connectionMetrics;
+
+    public CountingInputStream(final InputStream inputStream, final ConnectionMetrics connectionMetrics) {
+        super(inputStream);
+
+        if (connectionMetrics == null)
+            throw new IllegalArgumentException("connectionMetrics");
+
+        this.connectionMetrics = connectionMetrics;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        if (b >= 0)
+            connectionMetrics.bytesReceived(1);
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int read = super.read(b, off, len);
+        if (read > 0)
+            connectionMetrics.bytesReceived(read);
+        return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = super.skip(n);
+        if (skipped > 0)
+            connectionMetrics.bytesReceived(skipped);
+        return skipped;
+    }
+}
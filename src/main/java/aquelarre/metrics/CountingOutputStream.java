@@ -0,0 +1,33 @@
+package aquelarre.metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the bytes written to a connection.
+ */
+public class CountingOutputStream extends FilterOutputStream {
+    private final ConnectionMetrics connectionMetrics;
+
+    public CountingOutputStream(final OutputStream outputStream, final ConnectionMetrics connectionMetrics) {
+        super(outputStream);
+
+        if (connectionMetrics == null)
+            throw new IllegalArgumentException("connectionMetrics");
+
+        this.connectionMetrics = connectionMetrics;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        connectionMetrics.bytesSent(1);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        connectionMetrics.bytesSent(len);
+    }
+}
@@ -0,0 +1,95 @@
+package aquelarre.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values (latencies in nanoseconds, sizes...).
+ *
+ * Values are counted in log-linear buckets: every power of two range is split in {@value #SUB_BUCKETS} equal
+ * buckets, so percentiles are reported with a relative error below 12.5% using a fixed amount of memory.
+ */
+public class Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public void record(final long value) {
+        final long actual = value < 0 ? 0 : value;
+        buckets.incrementAndGet(bucketOf(actual));
+        count.increment();
+        sum.add(actual);
+        max.accumulate(actual);
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()} reading.
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public HistogramSnapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+
+        final long theMax = max.get();
+        return new HistogramSnapshot(total,
+                total == 0 ? 0 : (double) sum.sum() / total,
+                theMax,
+                percentile(counts, total, theMax, 0.50),
+                percentile(counts, total, theMax, 0.90),
+                percentile(counts, total, theMax, 0.99),
+                percentile(counts, total, theMax, 0.999));
+    }
+
+    private static long percentile(final long[] counts, final long total, final long max, final double percentile) {
+        if (total == 0)
+            return 0;
+
+        final long rank = (long) Math.ceil(total * percentile);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(upperBoundOf(i), max);
+        }
+        return max;
+    }
+
+    static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Largest value counted in the given bucket.
+     */
+    static long upperBoundOf(final int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long subBucket = bucket % SUB_BUCKETS;
+        final long upper = ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+        return upper < 0 ? Long.MAX_VALUE : upper;
+    }
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = bucketOf(Long.MAX_VALUE) + 1;
+}
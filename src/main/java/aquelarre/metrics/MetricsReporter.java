@@ -0,0 +1,64 @@
+package aquelarre.metrics;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the metrics of a node to a sink at a fixed period.
+ */
+public class MetricsReporter {
+    private final NodeMetrics metrics;
+    private final MetricsSink sink;
+    private final long periodMillis;
+    private ScheduledExecutorService scheduler;
+
+    private MetricsReporter(final NodeMetrics metrics, final MetricsSink sink, final long periodMillis) {
+        if (metrics == null)
+            throw new IllegalArgumentException("metrics");
+        if (sink == null)
+            throw new IllegalArgumentException("sink");
+        if (periodMillis <= 0)
+            throw new IllegalArgumentException("periodMillis");
+
+        this.metrics = metrics;
+        this.sink = sink;
+        this.periodMillis = periodMillis;
+    }
+
+    public static MetricsReporter of(final NodeMetrics metrics, final MetricsSink sink, final long periodMillis) {
+        return new MetricsReporter(metrics, sink, periodMillis);
+    }
+
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    public synchronized void start() {
+        if (scheduler != null)
+            throw new IllegalStateException("Reporter was already started!");
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread newThread = new Thread(r, String.format("Metrics Reporter Thread (%s)", metrics.type()));
+            newThread.setDaemon(true);
+            return newThread;
+        });
+        scheduler.scheduleAtFixedRate(this::publish, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler == null)
+            throw new IllegalStateException("Reporter was not started!");
+
+        scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    private void publish() {
+        try {
+            sink.publish(metrics);
+        } catch (final Throwable ignore) {
+            // A failing sink must not cancel the next reports
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package aquelarre.metrics;
+
+/**
+ * Receives the metrics of a node periodically, see {@link MetricsReporter}.
+ */
+public interface MetricsSink {
+    void publish(final NodeMetrics metrics);
+}
@@ -0,0 +1,141 @@
+package aquelarre.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of a node: traffic totals, routing rejections, write and listener dispatch latencies, and the traffic
+ * of every open connection.
+ */
+public class NodeMetrics implements NodeMetricsMXBean {
+    private final String type;
+    private final LongSupplier openConnections;
+    private final LongSupplier queueDepth;
+    final LongAdder messagesIn = new LongAdder();
+    final LongAdder messagesOut = new LongAdder();
+    final LongAdder bytesIn = new LongAdder();
+    final LongAdder bytesOut = new LongAdder();
+    private final LongAdder routingRejections = new LongAdder();
+    private final Histogram writeLatency = new Histogram();
+    private final Histogram dispatchLatency = new Histogram();
+    private final Map<String, ConnectionMetrics> connections = new ConcurrentHashMap<>();
+
+    private NodeMetrics(final String type, final LongSupplier openConnections, final LongSupplier queueDepth) {
+        if (type == null)
+            throw new IllegalArgumentException("type");
+        if (openConnections == null)
+            throw new IllegalArgumentException("openConnections");
+        if (queueDepth == null)
+            throw new IllegalArgumentException("queueDepth");
+
+        this.type = type;
+        this.openConnections = openConnections;
+        this.queueDepth = queueDepth;
+    }
+
+    public static NodeMetrics of(final String type, final LongSupplier openConnections,
+                                 final LongSupplier queueDepth) {
+        return new NodeMetrics(type, openConnections, queueDepth);
+    }
+
+    public String type() {
+        return type;
+    }
+
+    /**
+     * New counters for a connection, not listed until {@link #register(String, ConnectionMetrics)} is called.
+     */
+    public ConnectionMetrics newConnection() {
+        return new ConnectionMetrics(this);
+    }
+
+    public void register(final String id, final ConnectionMetrics connectionMetrics) {
+        connections.put(id, connectionMetrics);
+    }
+
+    public void unregister(final String id, final ConnectionMetrics connectionMetrics) {
+        connections.remove(id, connectionMetrics);
+    }
+
+    public void routingRejected() {
+        routingRejections.increment();
+    }
+
+    public Histogram writeLatency() {
+        return writeLatency;
+    }
+
+    public Histogram dispatchLatency() {
+        return dispatchLatency;
+    }
+
+    @Override
+    public long getMessagesIn() {
+        return messagesIn.sum();
+    }
+
+    @Override
+    public long getMessagesOut() {
+        return messagesOut.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getRoutingRejections() {
+        return routingRejections.sum();
+    }
+
+    @Override
+    public HistogramSnapshot getWriteLatency() {
+        return writeLatency.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getDispatchLatency() {
+        return dispatchLatency.snapshot();
+    }
+
+    @Override
+    public long getOpenConnections() {
+        return openConnections.getAsLong();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return queueDepth.getAsLong();
+    }
+
+    @Override
+    public Map<String, ConnectionMetrics> getConnections() {
+        return new HashMap<>(connections);
+    }
+
+    /**
+     * Registers these metrics in the platform MBean server as "aquelarre:type=&lt;type&gt;,name=&lt;name&gt;".
+     */
+    public ObjectName registerMBean(final String name) throws JMException {
+        final ObjectName objectName = ObjectName.getInstance(String.format("aquelarre:type=%s,name=%s",
+                type, ObjectName.quote(name)));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public static void unregisterMBean(final ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+}
@@ -0,0 +1,28 @@
+package aquelarre.metrics;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link NodeMetrics}. Latencies are in nanoseconds.
+ */
+public interface NodeMetricsMXBean {
+    long getMessagesIn();
+
+    long getMessagesOut();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getRoutingRejections();
+
+    HistogramSnapshot getWriteLatency();
+
+    HistogramSnapshot getDispatchLatency();
+
+    long getOpenConnections();
+
+    long getQueueDepth();
+
+    Map<String, ConnectionMetrics> getConnections();
+}
@@ -0,0 +1,282 @@
+package aquelarre;
+
+import aquelarre.logging.SilentLogger;
+import aquelarre.routing.AllValidRoutingManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ClientSessionTest {
+    private Server<String> server;
+    private CuttableProxy proxy;
+    private Client<String> client;
+    private final List<String> senders = new CopyOnWriteArrayList<>();
+    private final List<String> received = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        final int serverPort = freePort();
+        server = Server.of(serverPort, STRING_READER, STRING_WRITER, AllValidRoutingManager.getInstance());
+        server.setLogger(SilentLogger.getInstance());
+        server.setMessageListener(message -> {
+            senders.add(message.header().from());
+            received.add(message.payload());
+        });
+        server.start();
+
+        proxy = new CuttableProxy(serverPort);
+        client = Client.of("127.0.0.1", proxy.port(), REPLAY_BUFFER_SIZE,
+                ReconnectPolicy.of(10, 100, ReconnectPolicy.UNLIMITED_ATTEMPTS), STRING_READER, STRING_WRITER);
+        client.setLogger(SilentLogger.getInstance());
+        client.connect();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (client.isConnected())
+            client.disconnect();
+        proxy.close();
+        server.stop();
+    }
+
+    @Test
+    public void resumedSessionKeepsNodeIdAndDeliversEveryMessageOnce() throws Exception {
+        final String nodeId = client.nodeId();
+        final List<String> expected = new ArrayList<>();
+
+        send(expected, "a", 20);
+        awaitAcknowledged(expected.size());
+
+        cutConnection();
+        send(expected, "b", 5);
+        restoreConnection();
+        send(expected, "c", 5);
+        awaitReceived(expected.size());
+
+        assertEquals(nodeId, client.nodeId());
+        assertEquals(expected, received);
+        for (final String sender : senders)
+            assertEquals(nodeId, sender);
+    }
+
+    @Test
+    public void sendRejectedByFullReplayBufferIsNotReplayedTwice() throws Exception {
+        final List<String> expected = new ArrayList<>();
+        send(expected, "a", 3);
+        awaitAcknowledged(expected.size());
+
+        cutConnection();
+
+        send(expected, "f", REPLAY_BUFFER_SIZE);
+        try {
+            client.send(Node.SERVER, "overflow");
+            fail("Expected the replay buffer to be full");
+        } catch (final IOException expectedFailure) {}
+
+        restoreConnection();
+        send(expected, "p", 3);
+        awaitAcknowledged(expected.size());
+
+        cutConnection();
+        restoreConnection();
+        send(expected, "q", 1);
+        awaitReceived(expected.size());
+        Thread.sleep(SETTLE_MILLIS);
+
+        assertEquals(expected, received);
+    }
+
+    @Test
+    public void burstLargerThanReplayBufferIsDeliveredOnceAcrossResumption() throws Exception {
+        final List<String> expected = new ArrayList<>();
+        send(expected, "a", REPLAY_BUFFER_SIZE * 10);
+        cutConnection();
+        restoreConnection();
+        send(expected, "b", 1);
+        awaitReceived(expected.size());
+        Thread.sleep(SETTLE_MILLIS);
+
+        assertEquals(expected, received);
+    }
+
+    /**
+     * Large broadcasts echoed back to the sender, with a slow listener: the client blocks writing to the server
+     * while the server blocks writing the echoes back, and only the client reader can unblock both.
+     */
+    @Test(timeout = 60_000)
+    public void fullDuplexLoadKeepsFlowing() throws Exception {
+        final AtomicInteger echoes = new AtomicInteger();
+        client.setMessageListener(message -> {
+            if (echoes.incrementAndGet() % 50 == 0) {
+                try {
+                    Thread.sleep(1);
+                } catch (final InterruptedException ignore) {}
+            }
+        });
+
+        final char[] payload = new char[LARGE_PAYLOAD_SIZE];
+        Arrays.fill(payload, 'x');
+        final String largePayload = new String(payload);
+        for (int i = 0; i < FULL_DUPLEX_MESSAGES; i++)
+            client.broadcast(largePayload);
+
+        awaitUntil(() -> echoes.get() >= FULL_DUPLEX_MESSAGES);
+        assertEquals(FULL_DUPLEX_MESSAGES, received.size());
+    }
+
+    private void send(final List<String> expected, final String prefix, final int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            final String payload = prefix + i;
+            client.send(Node.SERVER, payload);
+            expected.add(payload);
+        }
+    }
+
+    /**
+     * Cuts the connection and keeps the client offline until {@link #restoreConnection()}.
+     */
+    private void cutConnection() throws InterruptedException {
+        proxy.setRefusing(true);
+        proxy.cut();
+        awaitUntil(() -> !client.isOnline());
+    }
+
+    private void restoreConnection() throws InterruptedException {
+        proxy.setRefusing(false);
+        awaitUntil(client::isOnline);
+    }
+
+    private void awaitReceived(final int count) throws InterruptedException {
+        awaitUntil(() -> received.size() >= count);
+    }
+
+    /**
+     * Waits until the server has both received the messages and acknowledged them to the idle client, freeing
+     * every slot of its replay buffer.
+     */
+    private void awaitAcknowledged(final int count) throws InterruptedException {
+        awaitReceived(count);
+        awaitUntil(() -> client.metrics().getQueueDepth() == 0);
+    }
+
+    private static void awaitUntil(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while(!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static final MessageReader<String> STRING_READER = dataInputStream ->
+            Envelope.of(Header.of(dataInputStream.readUTF(), dataInputStream.readUTF()), dataInputStream.readUTF());
+    private static final MessageWriter<String> STRING_WRITER = (message, dataOutputStream) -> {
+        dataOutputStream.writeUTF(message.header().from());
+        dataOutputStream.writeUTF(message.header().to());
+        dataOutputStream.writeUTF(message.payload());
+    };
+    private static final int REPLAY_BUFFER_SIZE = 8;
+    private static final long TIMEOUT_MILLIS = 10_000;
+    private static final long SETTLE_MILLIS = 200;
+    private static final int LARGE_PAYLOAD_SIZE = 60_000;
+    private static final int FULL_DUPLEX_MESSAGES = 1000;
+
+    /**
+     * TCP proxy in front of the server whose connections can be cut, and which can refuse new ones.
+     */
+    private static class CuttableProxy {
+        private final ServerSocket serverSocket;
+        private final int targetPort;
+        private final List<Socket> sockets = new ArrayList<>();
+        private volatile boolean refusing;
+
+        CuttableProxy(final int targetPort) throws IOException {
+            this.serverSocket = new ServerSocket(0);
+            this.targetPort = targetPort;
+
+            final Thread acceptor = new Thread(this::accept, "Proxy Acceptor Thread");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return serverSocket.getLocalPort();
+        }
+
+        void setRefusing(final boolean refusing) {
+            this.refusing = refusing;
+        }
+
+        void cut() {
+            synchronized(sockets) {
+                sockets.forEach(Utils::safeCloseClientConnection);
+                sockets.clear();
+            }
+        }
+
+        void close() {
+            try {
+                serverSocket.close();
+            } catch (final IOException ignore) {}
+            cut();
+        }
+
+        private void accept() {
+            while(!serverSocket.isClosed()) {
+                try {
+                    final Socket downstream = serverSocket.accept();
+                    if (refusing) {
+                        downstream.close();
+                        continue;
+                    }
+
+                    final Socket upstream = new Socket("127.0.0.1", targetPort);
+                    synchronized(sockets) {
+                        sockets.add(downstream);
+                        sockets.add(upstream);
+                    }
+                    pump(downstream, upstream);
+                    pump(upstream, downstream);
+                } catch (final IOException ignore) {}
+            }
+        }
+
+        private void pump(final Socket from, final Socket to) {
+            final Thread thread = new Thread(() -> {
+                final byte[] buffer = new byte[4096];
+                try (final InputStream in = from.getInputStream(); final OutputStream out = to.getOutputStream()) {
+                    int read;
+                    while((read = in.read(buffer)) >= 0)
+                        out.write(buffer, 0, read);
+                } catch (final IOException ignore) {
+                } finally {
+                    Utils.safeCloseClientConnection(from);
+                    Utils.safeCloseClientConnection(to);
+                }
+            }, "Proxy Pump Thread");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package aquelarre.logging;
+
+import aquelarre.Node;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LoggerTest {
+    @Test
+    public void levelsAtOrAboveTheThresholdAreEnabled() {
+        final ConsoleLogger logger = ConsoleLogger.of(LogLevel.WARN);
+        assertTrue(logger.isEnabled(LogLevel.ERROR));
+        assertTrue(logger.isEnabled(LogLevel.WARN));
+        assertFalse(logger.isEnabled(LogLevel.INFO));
+        assertFalse(logger.isEnabled(LogLevel.DEBUG));
+    }
+
+    @Test
+    public void silentLoggerEnablesNothing() {
+        for (final LogLevel level : LogLevel.values())
+            assertFalse(SilentLogger.getInstance().isEnabled(level));
+    }
+
+    @Test
+    public void disabledLevelNeitherBuildsNorDeliversTheMessage() {
+        final RecordingLogger logger = new RecordingLogger(LogLevel.WARN);
+        final CountingDetail detail = new CountingDetail();
+        final LoggingNode node = new LoggingNode(logger);
+
+        node.log(LogLevel.INFO, "Not logged: ", detail);
+        node.log(LogLevel.DEBUG, "Not logged: ", detail);
+
+        assertEquals(0, detail.rendered);
+        assertTrue(logger.messages.isEmpty());
+    }
+
+    @Test
+    public void enabledLevelDeliversTheMessageAndError() {
+        final RecordingLogger logger = new RecordingLogger(LogLevel.WARN);
+        final IllegalStateException error = new IllegalStateException("boom");
+        final LoggingNode node = new LoggingNode(logger);
+
+        node.log(LogLevel.ERROR, "Failed: ", error);
+
+        assertEquals(1, logger.messages.size());
+        assertEquals("Failed: " + error, logger.messages.get(0));
+        assertSame(error, logger.errors.get(0));
+    }
+
+    private static class RecordingLogger implements Logger {
+        private final LogLevel threshold;
+        private final List<String> messages = new ArrayList<>();
+        private final List<Throwable> errors = new ArrayList<>();
+
+        private RecordingLogger(final LogLevel threshold) {
+            this.threshold = threshold;
+        }
+
+        @Override
+        public boolean isEnabled(final LogLevel level) {
+            return level.isEnabledFor(threshold);
+        }
+
+        @Override
+        public void log(final LogLevel level, final String message, final Throwable error) {
+            messages.add(message);
+            errors.add(error);
+        }
+    }
+
+    private static class CountingDetail {
+        private int rendered;
+
+        @Override
+        public String toString() {
+            rendered++;
+            return "detail";
+        }
+    }
+
+    private static class LoggingNode extends Node<String> {
+        private LoggingNode(final Logger logger) {
+            super(dataInputStream -> null, (message, dataOutputStream) -> {});
+            setLogger(logger);
+        }
+
+        @Override
+        public void broadcast(final String message) {}
+
+        @Override
+        public void send(final String to, final String message) {}
+
+        @Override
+        protected void log(final LogLevel level, final String message, final Object detail) {
+            super.log(level, message, detail);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package aquelarre.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HistogramTest {
+    @Test
+    public void smallValuesHaveTheirOwnBucket() {
+        for (int value = 0; value < 8; value++) {
+            assertEquals(value, Histogram.bucketOf(value));
+            assertEquals(value, Histogram.upperBoundOf(value));
+        }
+    }
+
+    @Test
+    public void powersOfTwoStartNewBuckets() {
+        assertEquals(8, Histogram.bucketOf(8));
+        assertEquals(15, Histogram.bucketOf(15));
+        assertEquals(16, Histogram.bucketOf(16));
+        assertEquals(16, Histogram.bucketOf(17));
+        assertEquals(17, Histogram.bucketOf(18));
+        assertEquals(17, Histogram.upperBoundOf(16));
+    }
+
+    @Test
+    public void largestValueFallsInTheLastBucket() {
+        final int last = Histogram.bucketOf(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, Histogram.upperBoundOf(last));
+        assertTrue(Histogram.upperBoundOf(last - 1) < Long.MAX_VALUE);
+    }
+
+    @Test
+    public void everyValueIsWithinItsBucketBounds() {
+        for (long value = 1; value > 0; value = value * 3 / 2 + 1) {
+            final int bucket = Histogram.bucketOf(value);
+            assertTrue(value + " above its bucket", value <= Histogram.upperBoundOf(bucket));
+            assertTrue(value + " below its bucket", value > Histogram.upperBoundOf(bucket - 1));
+        }
+    }
+
+    @Test
+    public void negativeValuesAreRecordedAsZero() {
+        final Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MIN_VALUE);
+
+        final HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getP50());
+        assertEquals(0.0, snapshot.getMean(), 0.0);
+    }
+
+    @Test
+    public void percentilesAreWithinTheRelativeErrorBound() {
+        final Histogram histogram = new Histogram();
+        for (long value = 1; value <= 100_000; value++)
+            histogram.record(value);
+
+        final HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(100_000, snapshot.getCount());
+        assertEquals(100_000, snapshot.getMax());
+        assertEquals(50_000.5, snapshot.getMean(), 0.001);
+        assertWithinError(50_000, snapshot.getP50());
+        assertWithinError(90_000, snapshot.getP90());
+        assertWithinError(99_000, snapshot.getP99());
+        assertWithinError(99_900, snapshot.getP999());
+    }
+
+    @Test
+    public void emptyHistogramReportsZeros() {
+        final HistogramSnapshot snapshot = new Histogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getP99());
+    }
+
+    private static void assertWithinError(final long expected, final long actual) {
+        assertTrue(actual + " below " + expected, actual >= expected);
+        assertTrue(actual + " too far above " + expected, actual <= expected * 1.125);
+    }
+}
@@ -0,0 +1,95 @@
+package aquelarre.metrics;
+
+import aquelarre.Client;
+import aquelarre.Envelope;
+import aquelarre.Header;
+import aquelarre.MessageReader;
+import aquelarre.MessageWriter;
+import aquelarre.ReconnectPolicy;
+import aquelarre.Server;
+import aquelarre.logging.SilentLogger;
+import aquelarre.routing.AllValidRoutingManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NodeMetricsTest {
+    private Server<String> server;
+    private Client<String> client;
+
+    @Before
+    public void setUp() throws IOException {
+        final int port = freePort();
+        server = Server.of(port, STRING_READER, STRING_WRITER, AllValidRoutingManager.getInstance());
+        server.setLogger(SilentLogger.getInstance());
+        server.start();
+
+        client = Client.of("127.0.0.1", port, 8, ReconnectPolicy.none(), STRING_READER, STRING_WRITER);
+        client.setLogger(SilentLogger.getInstance());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (client.isConnected())
+            client.disconnect();
+        server.stop();
+    }
+
+    @Test
+    public void serverConnectionCountersAreRegisteredWhileConnected() throws Exception {
+        assertTrue(server.metrics().getConnections().isEmpty());
+
+        client.connect();
+        awaitUntil(() -> server.metrics().getConnections().containsKey(client.nodeId()));
+        assertEquals(1, server.metrics().getOpenConnections());
+
+        client.disconnect();
+        awaitUntil(() -> server.metrics().getConnections().isEmpty());
+        assertEquals(0, server.metrics().getOpenConnections());
+    }
+
+    @Test
+    public void connectionCountersAddUpInTheNodeTotals() throws Exception {
+        client.connect();
+        final String nodeId = client.nodeId();
+        for (int i = 0; i < 10; i++)
+            client.broadcast("message " + i);
+        awaitUntil(() -> server.metrics().getMessagesIn() == 10);
+
+        final ConnectionMetrics connection = server.metrics().getConnections().get(nodeId);
+        assertEquals(10, connection.getMessagesIn());
+        assertTrue(connection.getBytesIn() > 0);
+        assertEquals(10, client.metrics().getMessagesOut());
+        assertEquals(10, client.metrics().getWriteLatency().getCount());
+    }
+
+    private static void awaitUntil(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while(!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static final MessageReader<String> STRING_READER = dataInputStream ->
+            Envelope.of(Header.of(dataInputStream.readUTF(), dataInputStream.readUTF()), dataInputStream.readUTF());
+    private static final MessageWriter<String> STRING_WRITER = (message, dataOutputStream) -> {
+        dataOutputStream.writeUTF(message.header().from());
+        dataOutputStream.writeUTF(message.header().to());
+        dataOutputStream.writeUTF(message.payload());
+    };
+    private static final long TIMEOUT_MILLIS = 10_000;
+}